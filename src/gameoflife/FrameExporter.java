@@ -0,0 +1,348 @@
+package gameoflife;
+
+import java.awt.image.*;
+import java.io.*;
+import java.util.Arrays;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.imageio.*;
+import javax.imageio.metadata.*;
+import javax.imageio.stream.ImageOutputStream;
+
+/**
+ * Saves generations of a game of life as images, either as a numbered
+ * sequence of PNG files or as an animated GIF.
+ *
+ * Capturing a generation only copies the cells in the region being saved, one
+ * bit per cell; the images are drawn and encoded by a small pool of
+ * background threads. Frames wait in a bounded queue. If the encoders fall
+ * that far behind, the frame is dropped rather than holding up the game, and
+ * from then on only half as many generations are captured so that the frames
+ * stay evenly spaced. Each GIF frame is shown for as long as the generations
+ * it stands for.
+ */
+public class FrameExporter {
+
+    public enum Format {
+        PNG,                                    // one file per frame, in a directory
+        GIF                                     // one animated file
+    }
+
+    final static IndexColorModel COLORS = new IndexColorModel(1, 2,
+            new byte[] {(byte) 0xFF, 0}, new byte[] {(byte) 0xFF, 0}, new byte[] {(byte) 0xFF, 0});
+
+    final File output;
+    final Format format;
+    final int every, x, y, width, height, magnification, delayMillis;
+
+    private final ThreadPoolExecutor encoders;
+    private final ThreadLocal<BufferedImage> images = new ThreadLocal<BufferedImage>() {
+        @Override protected BufferedImage initialValue() {
+            return new BufferedImage(width * magnification, height * magnification, BufferedImage.TYPE_BYTE_BINARY, COLORS);
+        }
+    };
+
+    private volatile int spacing;               // generations between frames, which grows if the encoders fall behind
+
+    private ImageWriter gifWriter;
+    private ImageOutputStream gifStream;
+    private BufferedImage pending;              // the last GIF frame, which is written once we know how long to show it
+    private int pendingGeneration;
+
+    final AtomicLong captured = new AtomicLong(), dropped = new AtomicLong(), written = new AtomicLong();
+    private volatile IOException error;
+
+    // Finishes the output if the program exits while we're still recording,
+    // since the encoder threads are daemons and a GIF needs its trailer
+    private final Thread shutdownHook = new Thread(new Runnable() {
+        @Override public void run() {
+            try {
+                close();
+            }
+            catch(Exception e) {
+                e.printStackTrace();
+            }
+        }
+    }, "FrameExporter shutdown");
+    private final Object closeLock = new Object();
+    private boolean closed = false;
+
+    /**
+     * Constructor.
+     *
+     * @param output the directory for PNG files, or the GIF file
+     * @param format the image format
+     * @param every capture every this many generations
+     * @param x the x coordinate of the left edge of the region to capture
+     * @param y the y coordinate of the top edge of the region to capture
+     * @param width the width of the region to capture, in cells
+     * @param height the height of the region to capture, in cells
+     * @param magnification the width and height of a cell, in pixels
+     * @param threads the number of encoder threads, which is always one for GIFs
+     * @param queueSize the number of frames that can wait to be encoded
+     * @param delayMillis the time each GIF frame is shown for, when every frame is kept
+     * @throws IOException if the output can't be created
+     */
+    public FrameExporter(File output, Format format, int every, int x, int y, int width, int height,
+            int magnification, int threads, int queueSize, int delayMillis) throws IOException {
+        if(every < 1 || width < 1 || height < 1 || magnification < 1 || threads < 1 || queueSize < 1) {
+            throw new IllegalArgumentException("Export settings must be greater than zero.");
+        }
+        this.output = output;
+        this.format = format;
+        this.every = every;
+        this.spacing = every;
+        this.x = x;
+        this.y = y;
+        this.width = width;
+        this.height = height;
+        this.magnification = magnification;
+        this.delayMillis = delayMillis;
+
+        if(format == Format.GIF) {
+            threads = 1;                        // frames have to be appended in order
+            gifWriter = ImageIO.getImageWritersByFormatName("gif").next();
+            gifStream = ImageIO.createImageOutputStream(output);
+            if(gifStream == null) {
+                gifWriter.dispose();
+                throw new IOException("Can't write to " + output);
+            }
+            boolean prepared = false;
+            try {
+                gifWriter.setOutput(gifStream);
+                gifWriter.prepareWriteSequence(null);
+                prepared = true;
+            }
+            finally {
+                if(!prepared) {
+                    gifStream.close();
+                    gifWriter.dispose();
+                }
+            }
+        }
+        else if(!output.isDirectory() && !output.mkdirs()) {
+            throw new IOException("Can't create directory " + output);
+        }
+
+        encoders = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<Runnable>(queueSize), new ThreadFactory() {
+                    @Override public Thread newThread(Runnable r) {
+                        Thread thread = new Thread(r, "FrameExporter encoder");
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                }, new ThreadPoolExecutor.AbortPolicy());
+        Runtime.getRuntime().addShutdownHook(shutdownHook);
+    }
+
+    /**
+     * Constructor for a PNG sequence or GIF of every generation, encoded
+     * on up to four threads.
+     *
+     * @param output the directory for PNG files, or the GIF file
+     * @param format the image format
+     * @param x the x coordinate of the left edge of the region to capture
+     * @param y the y coordinate of the top edge of the region to capture
+     * @param width the width of the region to capture, in cells
+     * @param height the height of the region to capture, in cells
+     * @param magnification the width and height of a cell, in pixels
+     * @throws IOException if the output can't be created
+     */
+    public FrameExporter(File output, Format format, int x, int y, int width, int height, int magnification)
+            throws IOException {
+        this(output, format, 1, x, y, width, height, magnification,
+                Math.min(4, Runtime.getRuntime().availableProcessors()), 32, 100);
+    }
+
+    /**
+     * Captures the current generation if it's one we want. Returns straight
+     * away; the frame is drawn and encoded in the background. If the queue is
+     * full the frame is dropped and the spacing between frames is doubled.
+     *
+     * @param gameOfLife the game of life
+     * @return true if the generation was queued, false if it was skipped or dropped
+     */
+    public boolean capture(GameOfLife gameOfLife) {
+        long[] cells;
+        final int generation;
+        synchronized(gameOfLife) {
+            generation = gameOfLife.iterations;
+            if(generation % spacing != 0) {
+                return false;
+            }
+            cells = gameOfLife.getRegion(x, y, width, height);
+        }
+
+        final long[] snapshot = cells;
+        synchronized(this) {
+            final long frame = captured.get();      // only frames that are queued get a number, so there are no gaps
+            try {
+                encoders.execute(new Runnable() {
+                    @Override public void run() {
+                        encode(frame, generation, snapshot);
+                    }
+                });
+                captured.incrementAndGet();
+                return true;
+            }
+            catch(RejectedExecutionException e) {
+                dropped.incrementAndGet();
+                if(!encoders.isShutdown() && spacing <= Integer.MAX_VALUE / 2) {
+                    spacing *= 2;
+                }
+                return false;
+            }
+        }
+    }
+
+    private void encode(long frame, int generation, long[] cells) {
+        BufferedImage image = images.get();
+        byte[] pixels = ((DataBufferByte) image.getRaster().getDataBuffer()).getData();
+        int stride = (image.getWidth() + 7) / 8;
+
+        Arrays.fill(pixels, (byte) 0);
+        for(int w = 0; w < cells.length; ++w) {
+            for(long word = cells[w]; word != 0; word &= word - 1) {
+                int i = 64 * w + Long.numberOfTrailingZeros(word), col = i % width, row = i / width;
+                for(int py = row * magnification; py < (row + 1) * magnification; ++py) {
+                    for(int px = col * magnification; px < (col + 1) * magnification; ++px) {
+                        pixels[py * stride + (px >>> 3)] |= 0x80 >>> (px & 7);
+                    }
+                }
+            }
+        }
+
+        try {
+            if(format == Format.GIF) {
+                // There's only one GIF encoder thread, so frames arrive in order
+                BufferedImage previous = pending;
+                if(previous != null) {
+                    writeGif(previous, generation - pendingGeneration);
+                    images.set(previous);
+                }
+                else {
+                    images.remove();
+                }
+                pending = image;
+                pendingGeneration = generation;
+            }
+            else {
+                ImageIO.write(image, "png", new File(output, String.format("frame%06d.png", frame)));
+                written.incrementAndGet();
+            }
+        }
+        catch(IOException e) {
+            error = e;
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Appends a frame to the GIF.
+     *
+     * @param image the frame
+     * @param generations the number of generations until the next frame
+     * @throws IOException if the frame couldn't be written
+     */
+    private void writeGif(BufferedImage image, int generations) throws IOException {
+        if(generations <= 0) {
+            generations = spacing;              // the game was rewound
+        }
+        int delay = (int) Math.min(0xFFFF, (long) generations * delayMillis / (10L * every));
+        gifWriter.writeToSequence(new IIOImage(image, null, gifMetadata(image, written.get() == 0, delay)), null);
+        written.incrementAndGet();
+    }
+
+    private IIOMetadata gifMetadata(BufferedImage image, boolean first, int delay) throws IIOInvalidTreeException {
+        IIOMetadata metadata = gifWriter.getDefaultImageMetadata(new ImageTypeSpecifier(image), null);
+        String formatName = metadata.getNativeMetadataFormatName();
+        IIOMetadataNode root = (IIOMetadataNode) metadata.getAsTree(formatName);
+
+        IIOMetadataNode control = new IIOMetadataNode("GraphicControlExtension");
+        control.setAttribute("disposalMethod", "none");
+        control.setAttribute("userInputFlag", "FALSE");
+        control.setAttribute("transparentColorFlag", "FALSE");
+        control.setAttribute("delayTime", Integer.toString(delay));
+        control.setAttribute("transparentColorIndex", "0");
+        root.appendChild(control);
+
+        if(first) {
+            IIOMetadataNode extensions = new IIOMetadataNode("ApplicationExtensions"),
+                            loop = new IIOMetadataNode("ApplicationExtension");
+            loop.setAttribute("applicationID", "NETSCAPE");
+            loop.setAttribute("authenticationCode", "2.0");
+            loop.setUserObject(new byte[] {1, 0, 0});               // loop forever
+            extensions.appendChild(loop);
+            root.appendChild(extensions);
+        }
+
+        metadata.setFromTree(formatName, root);
+        return metadata;
+    }
+
+    /**
+     * Waits for the queued frames to be encoded and finishes the output. If
+     * this hasn't been called by the time the program exits, it's called then.
+     * Calling it again does nothing.
+     *
+     * @throws IOException if any frame couldn't be written
+     * @throws InterruptedException if interrupted while waiting for the encoders
+     */
+    public void close() throws IOException, InterruptedException {
+        synchronized(closeLock) {
+            if(closed) {
+                return;
+            }
+            closed = true;
+            try {
+                Runtime.getRuntime().removeShutdownHook(shutdownHook);
+            }
+            catch(IllegalStateException e) {
+                // we're being called from the hook, or the program is already exiting
+            }
+
+            encoders.shutdown();
+            encoders.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+
+            if(gifWriter != null) {
+                try {
+                    if(pending != null) {
+                        try {
+                            writeGif(pending, spacing);
+                        }
+                        catch(IOException e) {
+                            error = e;
+                        }
+                        pending = null;
+                    }
+                    gifWriter.endWriteSequence();
+                }
+                finally {
+                    gifStream.close();
+                    gifWriter.dispose();
+                }
+            }
+            if(error != null) {
+                throw error;
+            }
+        }
+    }
+
+    public long getFramesWritten() {
+        return written.get();
+    }
+
+    public long getFramesDropped() {
+        return dropped.get();
+    }
+
+    /**
+     * Gets the number of generations between frames, which is doubled every
+     * time a frame has to be dropped.
+     *
+     * @return the number of generations
+     */
+    public int getSpacing() {
+        return spacing;
+    }
+}
@@ -1,6 +1,7 @@
 package gameoflife;
 
 import java.util.ArrayDeque;
+import java.util.Arrays;
 import java.util.Queue;
 import java.util.regex.*;
 
@@ -19,6 +20,23 @@ public class GameOfLife {
 
     int iterations = 0;
 
+    int population = 0;
+    private final Occupancy rowOccupancy = new Occupancy(),         // live cells in each row, by y
+                            columnOccupancy = new Occupancy();      // live cells in each column, by x
+
+    History history;                            // null unless history is enabled
+    private int[] flips = new int[0];           // cells flipped by the current step or edit, as (x, y) pairs
+    private int flipCount = 0;
+
+    /**
+     * How a pasted pattern is combined with the cells already on the grid.
+     */
+    public enum PasteMode {
+        OR,                                     // live cells in the pattern are turned on
+        XOR,                                    // live cells in the pattern are toggled
+        REPLACE                                 // every cell under the pattern is set to the pattern's cell
+    }
+
     /**
      * A cell in the game of life grid.
      */
@@ -49,10 +67,61 @@ public class GameOfLife {
         }
     }
 
+    /**
+     * Live cell counts for each row or each column of the grid, kept up to
+     * date as cells flip, along with the first and last non-empty ones.
+     */
+    private static class Occupancy {
+        int[] counts = new int[16];
+        int origin = 0;                         // the coordinate of counts[0]
+        int nonEmpty = 0, first, last;
+
+        int get(int coord) {
+            int i = coord - origin;
+            return i >= 0 && i < counts.length ? counts[i] : 0;
+        }
+
+        void add(int coord, int delta) {
+            if(coord < origin || coord >= origin + counts.length) {
+                int start = Math.min(origin, coord), end = Math.max(origin + counts.length, coord + 1);
+                int slack = counts.length;      // leave room to keep growing in the same direction
+                if(coord < origin) {
+                    start -= slack;
+                }
+                else {
+                    end += slack;
+                }
+                int[] bigger = new int[end - start];
+                System.arraycopy(counts, 0, bigger, origin - start, counts.length);
+                counts = bigger;
+                origin = start;
+            }
+
+            int count = (counts[coord - origin] += delta);
+            if(delta > 0 && count == delta) {
+                if(nonEmpty++ == 0) {
+                    first = last = coord;
+                }
+                else {
+                    first = Math.min(first, coord);
+                    last = Math.max(last, coord);
+                }
+            }
+            else if(delta < 0 && count == 0 && --nonEmpty > 0) {
+                while(counts[first - origin] == 0) {
+                    ++first;
+                }
+                while(counts[last - origin] == 0) {
+                    --last;
+                }
+            }
+        }
+    }
+
     /**
      * Game of life rules.
      */
-    class Rules {
+    static class Rules {
         boolean[] born = new boolean[9], survives = new boolean[9];
                                     // In rule r, a cell with k live neighbors is born iff r.born[k].
                                     // Likewise, a cell with k live neighbors survives iff r.survives[k]
@@ -137,13 +206,27 @@ public class GameOfLife {
      * @param ruleString the rule
      */
     public GameOfLife(boolean[][] seed, String ruleString) {
+        this(seed, ruleString, -(seed[0].length / 2), -(seed.length / 2));
+    }
+
+    /**
+     * Constructor for a pattern that isn't centered on the origin, such as
+     * one piece of a bigger pattern.
+     *
+     * @param seed the initial pattern
+     * @param ruleString the rule
+     * @param x0 the x coordinate of seed[0][0]
+     * @param y0 the y coordinate of seed[0][0]
+     */
+    GameOfLife(boolean[][] seed, String ruleString, int x0, int y0) {
         Cell curr = null, last = topleft;
         rows = seed.length;
         columns = seed[0].length;
 
         for(int row = 0; row < seed.length; ++row) {
             for(int col = 0; col < seed[0].length; ++col) {
-                curr = new Cell(seed[row][col], col - (columns / 2), row - (rows / 2));
+                curr = new Cell(false, x0 + col, y0 + row);
+                setLive(curr, seed[row][col]);
 
                 if(topleft == null) {
                     topleft = curr;
@@ -314,86 +397,426 @@ public class GameOfLife {
         if(minimumCellsToExpand > 3) {
             return;
         }
+        int liveCellsToExpand = Math.max(minimumCellsToExpand, 1);  // edges with fewer live cells needn't be scanned
 
         if(columns > minimumCellsToExpand) {
-            for(curr = topleft; curr != null; curr = curr.e) {
-                if(curr.live) {
-                    if(minimumCellsToExpand == 1) {
-                        addTopRow();
-                        break;
-                    }
-                    else if(minimumCellsToExpand == 2 &&
-                            ((curr.w != null && curr.w.live) || (curr.e != null && curr.e.live))) {
-                        addTopRow();
-                        break;
-                    }
-                    else if(curr.w != null && curr.w.live && curr.e != null && curr.e.live) {
-                        addTopRow();
-                        break;
+            if(rowOccupancy.get(topleft.y) >= liveCellsToExpand) {
+                for(curr = topleft; curr != null; curr = curr.e) {
+                    if(curr.live) {
+                        if(minimumCellsToExpand == 1) {
+                            addTopRow();
+                            break;
+                        }
+                        else if(minimumCellsToExpand == 2 &&
+                                ((curr.w != null && curr.w.live) || (curr.e != null && curr.e.live))) {
+                            addTopRow();
+                            break;
+                        }
+                        else if(curr.w != null && curr.w.live && curr.e != null && curr.e.live) {
+                            addTopRow();
+                            break;
+                        }
                     }
                 }
             }
-            for(curr = bottomright; curr != null; curr = curr.w) {
-                if(curr.live) {
-                    if(minimumCellsToExpand == 1) {
-                        addBottomRow();
-                        break;
-                    }
-                    else if(minimumCellsToExpand == 2 &&
-                            ((curr.e != null && curr.e.live) || (curr.w != null && curr.w.live))) {
-                        addBottomRow();
-                        break;
-                    }
-                    else if(curr.e != null && curr.e.live && curr.w != null && curr.w.live) {
-                        addBottomRow();
-                        break;
+            if(rowOccupancy.get(bottomright.y) >= liveCellsToExpand) {
+                for(curr = bottomright; curr != null; curr = curr.w) {
+                    if(curr.live) {
+                        if(minimumCellsToExpand == 1) {
+                            addBottomRow();
+                            break;
+                        }
+                        else if(minimumCellsToExpand == 2 &&
+                                ((curr.e != null && curr.e.live) || (curr.w != null && curr.w.live))) {
+                            addBottomRow();
+                            break;
+                        }
+                        else if(curr.e != null && curr.e.live && curr.w != null && curr.w.live) {
+                            addBottomRow();
+                            break;
+                        }
                     }
                 }
             }
         }
 
         if(rows > minimumCellsToExpand) {
-            for(curr = topleft; curr != null; curr = curr.s) {
-                if(curr.live) {
-                    if(minimumCellsToExpand == 1) {
-                        addLeftColumn();
-                        break;
-                    }
-                    else if(minimumCellsToExpand == 2 &&
-                            ((curr.s != null && curr.s.live) || (curr.n != null && curr.n.live))) {
-                        addLeftColumn();
-                        break;
-                    }
-                    else if(curr.s != null && curr.s.live && curr.n != null && curr.n.live) {
-                        addLeftColumn();
-                        break;
+            if(columnOccupancy.get(topleft.x) >= liveCellsToExpand) {
+                for(curr = topleft; curr != null; curr = curr.s) {
+                    if(curr.live) {
+                        if(minimumCellsToExpand == 1) {
+                            addLeftColumn();
+                            break;
+                        }
+                        else if(minimumCellsToExpand == 2 &&
+                                ((curr.s != null && curr.s.live) || (curr.n != null && curr.n.live))) {
+                            addLeftColumn();
+                            break;
+                        }
+                        else if(curr.s != null && curr.s.live && curr.n != null && curr.n.live) {
+                            addLeftColumn();
+                            break;
+                        }
                     }
                 }
             }
-            for(curr = bottomright; curr != null; curr = curr.n) {
-                if(curr.live) {
-                    if(minimumCellsToExpand == 1) {
-                        addRightColumn();
-                        break;
-                    }
-                    else if(minimumCellsToExpand == 2 &&
-                            ((curr.n != null && curr.n.live) || (curr.s != null && curr.s.live))) {
-                        addRightColumn();
-                        break;
+            if(columnOccupancy.get(bottomright.x) >= liveCellsToExpand) {
+                for(curr = bottomright; curr != null; curr = curr.n) {
+                    if(curr.live) {
+                        if(minimumCellsToExpand == 1) {
+                            addRightColumn();
+                            break;
+                        }
+                        else if(minimumCellsToExpand == 2 &&
+                                ((curr.n != null && curr.n.live) || (curr.s != null && curr.s.live))) {
+                            addRightColumn();
+                            break;
+                        }
+                        else if(curr.s != null && curr.s.live && curr.n != null && curr.n.live) {
+                            addRightColumn();
+                            break;
+                        }
                     }
-                    else if(curr.s != null && curr.s.live && curr.n != null && curr.n.live) {
-                        addRightColumn();
-                        break;
+                }
+            }
+        }
+    }
+
+    /**
+     * Sets a cell, updating the live cell counts and noting the change if it flips.
+     */
+    private void setLive(Cell cell, boolean live) {
+        if(cell.live != live) {
+            cell.live = live;
+
+            int delta = live ? 1 : -1;
+            population += delta;
+            rowOccupancy.add(cell.y, delta);
+            columnOccupancy.add(cell.x, delta);
+
+            if(history != null) {
+                if(flipCount == flips.length) {
+                    flips = Arrays.copyOf(flips, Math.max(16, 2 * flipCount));
+                }
+                flips[flipCount++] = cell.x;
+                flips[flipCount++] = cell.y;
+            }
+        }
+    }
+
+    /**
+     * Gets the number of live cells.
+     *
+     * @return the number of live cells
+     */
+    public synchronized int getPopulation() {
+        return population;
+    }
+
+    /**
+     * Gets the number of live cells in a row.
+     *
+     * @param y the y coordinate of the row
+     * @return the number of live cells in the row
+     */
+    public synchronized int getRowPopulation(int y) {
+        return rowOccupancy.get(y);
+    }
+
+    /**
+     * Gets the number of live cells in a column.
+     *
+     * @param x the x coordinate of the column
+     * @return the number of live cells in the column
+     */
+    public synchronized int getColumnPopulation(int x) {
+        return columnOccupancy.get(x);
+    }
+
+    /**
+     * Gets the smallest rectangle that contains every live cell.
+     *
+     * @return {minX, minY, maxX, maxY}, or null if there are no live cells
+     */
+    public synchronized int[] getBoundingBox() {
+        if(population == 0) {
+            return null;
+        }
+        return new int[] {columnOccupancy.first, rowOccupancy.first, columnOccupancy.last, rowOccupancy.last};
+    }
+
+    /**
+     * Starts recording history from the current generation.
+     *
+     * @param keyframeInterval the number of generations between full copies of the grid
+     * @param budget the approximate number of bytes the history may use
+     */
+    public synchronized void enableHistory(int keyframeInterval, long budget) {
+        history = new History(keyframeInterval, budget);
+        history.restart(iterations, getLiveCells());
+    }
+
+    /**
+     * Gets the recorded history.
+     *
+     * @return the history, or null if it isn't enabled
+     */
+    public History getHistory() {
+        return history;
+    }
+
+    /**
+     * Sets the grid back to a recorded generation. Any later recorded
+     * generations are kept until the game moves on, so this can also be used
+     * to go forward again.
+     *
+     * @param generation the generation
+     * @throws IllegalStateException if history isn't enabled
+     * @throws IllegalArgumentException if the generation isn't in the history
+     */
+    public synchronized void rewind(int generation) {
+        if(history == null) {
+            throw new IllegalStateException("History isn't enabled.");
+        }
+
+        boolean[][] grid = history.reconstruct(generation, topleft.x, topleft.y, columns, rows);
+        Cell rowHeader = topleft, current;
+        for(int row = 0; row < rows; ++row, rowHeader = rowHeader.s) {
+            current = rowHeader;
+            for(int col = 0; col < columns; ++col, current = current.e) {
+                setLive(current, grid[row][col]);
+            }
+        }
+        iterations = generation;
+        flipCount = 0;                          // the history already has these
+    }
+
+    /**
+     * Records the cells flipped by an edit in the history.
+     */
+    private void edited() {
+        if(history != null) {
+            history.recordEdit(iterations, flips, flipCount);
+        }
+        flipCount = 0;
+    }
+
+    /**
+     * Adds dead cells around the edge of the grid until it covers the given region.
+     *
+     * @param x the x coordinate of the left edge of the region
+     * @param y the y coordinate of the top edge of the region
+     * @param w the width of the region
+     * @param h the height of the region
+     */
+    private void growToContain(int x, int y, int w, int h) {
+        while(topleft.y > y) {
+            addTopRow();
+        }
+        while(bottomright.y < y + h - 1) {
+            addBottomRow();
+        }
+        while(topleft.x > x) {
+            addLeftColumn();
+        }
+        while(bottomright.x < x + w - 1) {
+            addRightColumn();
+        }
+    }
+
+    /**
+     * Finds the cell at the given coordinates, which must be on the grid.
+     */
+    private Cell cellAt(int x, int y) {
+        Cell curr = topleft;
+        for(int i = topleft.x; i < x; ++i) {
+            curr = curr.e;
+        }
+        for(int j = topleft.y; j < y; ++j) {
+            curr = curr.s;
+        }
+        return curr;
+    }
+
+    /**
+     * Pastes a pattern onto the grid, growing the grid if the pattern doesn't fit.
+     * Rows may be different lengths; the grid is grown to fit the longest.
+     *
+     * @param pattern the pattern, indexed [row][column]
+     * @param x the x coordinate of pattern[0][0]
+     * @param y the y coordinate of pattern[0][0]
+     * @param mode how the pattern is combined with the cells already on the grid
+     */
+    public synchronized void paste(boolean[][] pattern, int x, int y, PasteMode mode) {
+        int width = 0;
+        for(boolean[] row : pattern) {
+            width = Math.max(width, row.length);
+        }
+        if(width == 0) {
+            return;
+        }
+        growToContain(x, y, width, pattern.length);
+
+        Cell rowHeader = cellAt(x, y), current;
+        for(int row = 0; row < pattern.length; ++row, rowHeader = rowHeader.s) {
+            current = rowHeader;
+            for(int col = 0; col < pattern[row].length; ++col, current = current.e) {
+                setLive(current, combine(current.live, pattern[row][col], mode));
+            }
+        }
+        edited();
+    }
+
+    /**
+     * Pastes the whole grid of another game of life onto this one, growing
+     * this grid if it doesn't fit. The other grid is copied under its own
+     * lock first, so it may keep running while this one is changed.
+     *
+     * @param other the game of life to copy from, which may be this one
+     * @param dx added to the x coordinate of every copied cell
+     * @param dy added to the y coordinate of every copied cell
+     * @param mode how the copied cells are combined with the cells already on the grid
+     */
+    public void paste(GameOfLife other, int dx, int dy, PasteMode mode) {
+        boolean[][] pattern;
+        int x, y;
+        synchronized(other) {
+            pattern = other.toArray();
+            x = other.topleft.x;
+            y = other.topleft.y;
+        }
+        paste(pattern, x + dx, y + dy, mode);
+    }
+
+    private static boolean combine(boolean live, boolean pasted, PasteMode mode) {
+        switch(mode) {
+            case OR:
+                return live || pasted;
+            case XOR:
+                return live ^ pasted;
+            default:
+                return pasted;
+        }
+    }
+
+    /**
+     * Turns on every cell in a rectangle, growing the grid if the rectangle doesn't fit.
+     *
+     * @param x the x coordinate of the left edge of the rectangle
+     * @param y the y coordinate of the top edge of the rectangle
+     * @param w the width of the rectangle
+     * @param h the height of the rectangle
+     */
+    public synchronized void fill(int x, int y, int w, int h) {
+        if(w > 0 && h > 0) {
+            growToContain(x, y, w, h);
+            setRegion(x, y, w, h, true);
+            edited();
+        }
+    }
+
+    /**
+     * Turns off every cell in a rectangle. Only the part of the rectangle on the grid is touched.
+     *
+     * @param x the x coordinate of the left edge of the rectangle
+     * @param y the y coordinate of the top edge of the rectangle
+     * @param w the width of the rectangle
+     * @param h the height of the rectangle
+     */
+    public synchronized void clear(int x, int y, int w, int h) {
+        int left = Math.max(x, topleft.x), top = Math.max(y, topleft.y),
+            right = Math.min(x + w - 1, bottomright.x), bottom = Math.min(y + h - 1, bottomright.y);
+        if(left <= right && top <= bottom) {
+            setRegion(left, top, right - left + 1, bottom - top + 1, false);
+            edited();
+        }
+    }
+
+    private void setRegion(int x, int y, int w, int h, boolean live) {
+        Cell rowHeader = cellAt(x, y), current;
+        for(int row = 0; row < h; ++row, rowHeader = rowHeader.s) {
+            current = rowHeader;
+            for(int col = 0; col < w; ++col, current = current.e) {
+                setLive(current, live);
+            }
+        }
+    }
+
+    /**
+     * Copies the grid into an array.
+     *
+     * @return the cells on the grid, indexed [row][column], with the top left cell at [0][0]
+     */
+    public synchronized boolean[][] toArray() {
+        boolean[][] grid = new boolean[rows][columns];
+        Cell rowHeader = topleft, current;
+        for(int row = 0; row < rows; ++row, rowHeader = rowHeader.s) {
+            current = rowHeader;
+            for(int col = 0; col < columns; ++col, current = current.e) {
+                grid[row][col] = current.live;
+            }
+        }
+        return grid;
+    }
+
+    /**
+     * Copies the cells in a rectangle into a bitset. Only the part of the
+     * rectangle on the grid is walked; everything else is dead.
+     *
+     * @param x the x coordinate of the left edge of the rectangle
+     * @param y the y coordinate of the top edge of the rectangle
+     * @param w the width of the rectangle
+     * @param h the height of the rectangle
+     * @return the cells, with the cell at column col and row row in bit (row * w + col)
+     */
+    synchronized long[] getRegion(int x, int y, int w, int h) {
+        long[] bits = new long[(int) (((long) w * h + 63) >>> 6)];
+        int left = Math.max(x, topleft.x), top = Math.max(y, topleft.y),
+            right = Math.min(x + w - 1, bottomright.x), bottom = Math.min(y + h - 1, bottomright.y);
+        if(left > right || top > bottom) {
+            return bits;
+        }
+
+        Cell rowHeader = cellAt(left, top), current;
+        for(int row = top - y; row <= bottom - y; ++row, rowHeader = rowHeader.s) {
+            current = rowHeader;
+            for(int col = left - x; col <= right - x; ++col, current = current.e) {
+                if(current.live) {
+                    int i = row * w + col;
+                    bits[i >>> 6] |= 1L << i;
+                }
+            }
+        }
+        return bits;
+    }
+
+    /**
+     * Gets the coordinates of every live cell in the grid, in row-major order.
+     *
+     * @return the live cells as consecutive (x, y) pairs
+     */
+    public synchronized int[] getLiveCells() {
+        int[] cells = new int[16];
+        int size = 0;
+
+        for(Cell rowHeader = topleft; rowHeader != null; rowHeader = rowHeader.s) {
+            for(Cell current = rowHeader; current != null; current = current.e) {
+                if(current.live) {
+                    if(size == cells.length) {
+                        cells = Arrays.copyOf(cells, size * 2);
                     }
+                    cells[size++] = current.x;
+                    cells[size++] = current.y;
                 }
             }
         }
+        return Arrays.copyOf(cells, size);
     }
 
     /**
      * Generates the next iteration of the game of life.
      */
-    public void next() {
+    public synchronized void next() {
         class UpdateCell {
             Cell cellRef;
             boolean updateValue;
@@ -404,6 +827,11 @@ public class GameOfLife {
             }
         }
 
+        if(history != null) {
+            history.truncate(iterations);       // we may have been rewound
+        }
+        flipCount = 0;
+
         expandGrid();
 
         Cell current = topleft, rowHeader = topleft;
@@ -415,7 +843,7 @@ public class GameOfLife {
                 buffer.add(new UpdateCell(current, rules.apply(current)));
                 if(buffer.size() >= columns + 2) {
                     u = buffer.remove();
-                    u.cellRef.live = u.updateValue;
+                    setLive(u.cellRef, u.updateValue);
                 }
                 current = current.e;
             }
@@ -424,9 +852,14 @@ public class GameOfLife {
         }
         while(!buffer.isEmpty()) {
             u = buffer.remove();
-            u.cellRef.live = u.updateValue;
+            setLive(u.cellRef, u.updateValue);
         }
 
         ++iterations;
+
+        if(history != null) {
+            history.record(iterations, Arrays.copyOf(flips, flipCount), this);
+        }
+        flipCount = 0;
     }
 }
@@ -11,15 +11,22 @@ public class GameOfLifeApp extends JFrame implements ActionListener, Runnable {
 
     static final boolean T = true, F = false;
 
-    final GameOfLife gameOfLife;
+    static final int HISTORY_KEYFRAME_INTERVAL = 32;
+    static final long HISTORY_BUDGET = 64L << 20;
+
+    volatile GameOfLife gameOfLife;
+    volatile FrameExporter exporter;    // set while recording
+    volatile RLEIndex pattern;          // set while we're only showing the part of a lazily loaded pattern in view
 
     GameOfLifeCanvas gCanvas;
-    JButton startStopButton;
-    JSlider timeSlider;
+    JButton startStopButton, backButton, recordButton;
+    JSlider timeSlider, scrubSlider;
     JComboBox magnifyComboBox;
+    JLabel populationLabel;
 
     volatile boolean running = false;
     volatile int sleepTime = 600;
+    boolean updatingScrubber = false;
 
     Thread logicThread;
 
@@ -28,6 +35,7 @@ public class GameOfLifeApp extends JFrame implements ActionListener, Runnable {
         this.gameOfLife = gameOfLife;
 
         createAndShowGUI();
+        updateControls();
 
         logicThread = new Thread(this);
     }
@@ -36,6 +44,40 @@ public class GameOfLifeApp extends JFrame implements ActionListener, Runnable {
         this(new GameOfLife(seed, rule));
     }
 
+    /**
+     * Constructor for a lazily loaded pattern. Only the part of the pattern
+     * that's in view is decoded until the game is started.
+     *
+     * @param pattern the indexed RLE file
+     * @throws java.io.IOException if the file can't be read
+     */
+    public GameOfLifeApp(RLEIndex pattern) throws java.io.IOException {
+        this(loadViewport(pattern, 1));
+        this.pattern = pattern;
+    }
+
+    private static GameOfLife loadViewport(RLEIndex pattern, int magnification) throws java.io.IOException {
+        int cells = GameOfLifeCanvas.SIZE / magnification;
+        return pattern.load(-(cells / 2), -(cells / 2), cells, cells);
+    }
+
+    /**
+     * Swaps the preview of a lazily loaded pattern for the whole pattern.
+     */
+    private void loadPattern() {
+        RLEIndex p = pattern;
+        if(p != null) {
+            try {
+                gCanvas.gameOfLife = gameOfLife = p.load();
+                pattern = null;
+                p.close();
+            }
+            catch(java.io.IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
     private void createAndShowGUI() {
         try {
             UIManager.setLookAndFeel(UIManager.getCrossPlatformLookAndFeelClassName());
@@ -53,6 +95,27 @@ public class GameOfLifeApp extends JFrame implements ActionListener, Runnable {
         startStopButton = new JButton("Start");
         startStopButton.addActionListener(this);
 
+        backButton = new JButton("Back");
+        backButton.setEnabled(false);
+        backButton.addActionListener(this);
+
+        recordButton = new JButton("Record");
+        recordButton.addActionListener(this);
+
+        populationLabel = new JLabel();
+        populationLabel.setBorder(BorderFactory.createTitledBorder("Population"));
+
+        scrubSlider = new JSlider(0, 0, 0);
+        scrubSlider.setEnabled(false);
+        scrubSlider.setBorder(BorderFactory.createTitledBorder("Generation"));
+        scrubSlider.addChangeListener(new ChangeListener() {
+            @Override public void stateChanged(ChangeEvent e) {
+                if(!updatingScrubber && !running) {
+                    rewind(scrubSlider.getValue());
+                }
+            }
+        });
+
         timeSlider = new JSlider(0, 2000, sleepTime);
         timeSlider.setPaintLabels(true);
         timeSlider.setPaintTicks(true);
@@ -69,11 +132,19 @@ public class GameOfLifeApp extends JFrame implements ActionListener, Runnable {
         magnifyComboBox.setMaximumSize(new Dimension(20, 25));
         magnifyComboBox.addActionListener(this);
 
+        buttonPanel.add(backButton);
+        buttonPanel.add(Box.createHorizontalStrut(5));
         buttonPanel.add(startStopButton);
         buttonPanel.add(Box.createHorizontalStrut(5));
         buttonPanel.add(timeSlider);
         buttonPanel.add(Box.createHorizontalStrut(5));
         buttonPanel.add(magnifyComboBox);
+        buttonPanel.add(Box.createHorizontalStrut(5));
+        buttonPanel.add(recordButton);
+        buttonPanel.add(Box.createHorizontalStrut(5));
+        buttonPanel.add(scrubSlider);
+        buttonPanel.add(Box.createHorizontalStrut(5));
+        buttonPanel.add(populationLabel);
         buttonPanel.setLayout(new BoxLayout(buttonPanel, BoxLayout.LINE_AXIS));
         buttonPanel.setBorder(BorderFactory.createEmptyBorder(10, 10, 10, 10));
 
@@ -86,11 +157,122 @@ public class GameOfLifeApp extends JFrame implements ActionListener, Runnable {
         pack();
     }
 
+    /**
+     * Sets the game back (or forward) to a recorded generation and shows it.
+     *
+     * @param generation the generation
+     */
+    private void rewind(int generation) {
+        History history = gameOfLife.getHistory();
+        if(history != null && history.contains(generation)) {
+            gameOfLife.rewind(generation);
+            gCanvas.repaint();
+            updateControls();
+        }
+    }
+
+    /**
+     * Matches the population label, scrub slider and back button to the game.
+     * Must be called on the event dispatch thread.
+     */
+    private void updateControls() {
+        populationLabel.setText(Integer.toString(gameOfLife.getPopulation()));
+
+        History history = gameOfLife.getHistory();
+        if(history == null) {
+            return;
+        }
+        updatingScrubber = true;
+        synchronized(gameOfLife) {
+            scrubSlider.setMinimum(history.getOldestGeneration());
+            scrubSlider.setMaximum(history.getNewestGeneration());
+            scrubSlider.setValue(gameOfLife.iterations);
+            backButton.setEnabled(!running && gameOfLife.iterations > history.getOldestGeneration());
+        }
+        scrubSlider.setEnabled(!running);
+        updatingScrubber = false;
+    }
+
+    /**
+     * Asks where to save frames and starts recording what's on the canvas.
+     * A file name ending in .gif records an animated GIF; anything else is
+     * taken as a directory for a sequence of PNG files.
+     */
+    private void startRecording() {
+        JFileChooser chooser = new JFileChooser();
+        chooser.setDialogTitle("Record to .gif file or PNG directory");
+        if(chooser.showSaveDialog(this) != JFileChooser.APPROVE_OPTION) {
+            return;
+        }
+        java.io.File file = chooser.getSelectedFile();
+        FrameExporter.Format format = file.getName().toLowerCase().endsWith(".gif") ?
+                FrameExporter.Format.GIF : FrameExporter.Format.PNG;
+
+        int m = gCanvas.magnification, cells = GameOfLifeCanvas.SIZE / m;
+        try {
+            exporter = new FrameExporter(file, format, -(cells / 2), -(cells / 2), cells, cells, m);
+            recordButton.setText("Stop recording");
+        }
+        catch(java.io.IOException ex) {
+            JOptionPane.showMessageDialog(this, ex.getMessage(), "Can't record", JOptionPane.ERROR_MESSAGE);
+        }
+    }
+
+    /**
+     * Stops recording. The frames still waiting to be encoded are finished
+     * off in the background, and then we say how many were saved.
+     */
+    private void stopRecording() {
+        final FrameExporter e = exporter;
+        exporter = null;
+        recordButton.setText("Record");
+
+        new Thread(new Runnable() {
+            @Override public void run() {
+                String message = null;
+                try {
+                    e.close();
+                }
+                catch(Exception ex) {
+                    ex.printStackTrace();
+                    message = "Recording failed: " + ex.getMessage();
+                }
+                if(message == null) {
+                    message = String.format("Saved %d frames to %s.", e.getFramesWritten(), e.output);
+                    if(e.getFramesDropped() > 0) {
+                        message += String.format("%n%d frames were dropped because encoding fell behind, "
+                                + "so by the end one frame was saved every %d generations.", e.getFramesDropped(), e.getSpacing());
+                    }
+                }
+
+                final String text = message;
+                SwingUtilities.invokeLater(new Runnable() {
+                    @Override public void run() {
+                        JOptionPane.showMessageDialog(GameOfLifeApp.this, text, "Recording", JOptionPane.INFORMATION_MESSAGE);
+                    }
+                });
+            }
+        }).start();
+    }
+
     public void run() {
+        loadPattern();
+        gameOfLife.enableHistory(HISTORY_KEYFRAME_INTERVAL, HISTORY_BUDGET);
+
+        Runnable controlsUpdater = new Runnable() {
+            @Override public void run() {
+                updateControls();
+            }
+        };
         while(true) {
             if(running) {
                 gCanvas.paint();
+                FrameExporter recorder = exporter;
+                if(recorder != null) {
+                    recorder.capture(gameOfLife);
+                }
                 gameOfLife.next();
+                SwingUtilities.invokeLater(controlsUpdater);
 
                 try {
                     Thread.sleep(sleepTime);
@@ -106,10 +288,34 @@ public class GameOfLifeApp extends JFrame implements ActionListener, Runnable {
                 logicThread.start();
             }
             startStopButton.setText((running = !running) ? "Stop" : "Start");
+            updateControls();
+        }
+        else if(e.getSource() == backButton) {
+            rewind(gameOfLife.iterations - 1);
+        }
+        else if(e.getSource() == recordButton) {
+            if(exporter == null) {
+                startRecording();
+            }
+            else {
+                stopRecording();
+            }
         }
         else if(e.getSource() == magnifyComboBox) {
             String s = (String) ((JComboBox) e.getSource()).getSelectedItem();
             gCanvas.magnification = Character.digit(s.charAt(0), 10);
+
+            RLEIndex p = pattern;
+            if(p != null && !running) {
+                try {
+                    gCanvas.gameOfLife = gameOfLife = loadViewport(p, gCanvas.magnification);
+                }
+                catch(java.io.IOException ex) {
+                    ex.printStackTrace();
+                }
+            }
+            gCanvas.repaint();
+            updateControls();
         }
     }
 
@@ -141,6 +347,9 @@ public class GameOfLifeApp extends JFrame implements ActionListener, Runnable {
                 }
             });
         }
+        else if(args[0].equals("-lazy") && args.length > 1) {
+            new GameOfLifeApp(RLEIndex.create(new java.io.File(args[1])));
+        }
         else {
             new GameOfLifeApp(RLEReader.create(new java.io.File(args[0])));
         }
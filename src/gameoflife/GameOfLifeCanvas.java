@@ -6,7 +6,7 @@ import java.awt.Graphics;
 @SuppressWarnings("serial")
 public class GameOfLifeCanvas extends Canvas {
 
-    final GameOfLife gameOfLife;
+    volatile GameOfLife gameOfLife;
 
     final static int SIZE = 400;
     Graphics g;
@@ -18,44 +18,68 @@ public class GameOfLifeCanvas extends Canvas {
         setBackground(java.awt.Color.WHITE);
     }
 
+    /**
+     * Paints the canvas when AWT asks for it, e.g. when the window is first shown.
+     */
+    @Override public void paint(Graphics graphics) {
+        draw(graphics);
+    }
+
+    /**
+     * Paints the canvas from the simulation thread.
+     */
     public void paint() {
         if(g == null) {
             g = getGraphics();
         }
-        g.clearRect(0, 0, SIZE, SIZE);
+        draw(g);
+    }
 
-        int x0 = (SIZE / 2 + gameOfLife.topleft.x * magnification),
-            y0 = (SIZE / 2 + gameOfLife.topleft.y * magnification);
+    /**
+     * Draws the grid. Holds the game's lock while walking the cells so that
+     * the grid can't be stepped, edited or grown under us.
+     *
+     * @param graphics the graphics context to draw with
+     */
+    private void draw(Graphics graphics) {
+        graphics.clearRect(0, 0, SIZE, SIZE);
 
-        GameOfLife.Cell rowHeader = gameOfLife.topleft;
-        while(x0 < 0) {
-            rowHeader = rowHeader.e;
-            x0 += magnification;
-        }
-        GameOfLife.Cell current = rowHeader;
-        while(y0 < 0) {
-            current = current.s;
-            y0 += magnification;
-        }
+        GameOfLife game = gameOfLife;
+        synchronized(game) {
+            int x0 = (SIZE / 2 + game.topleft.x * magnification),
+                y0 = (SIZE / 2 + game.topleft.y * magnification);
+
+            // Skip the columns and rows that are off the canvas
+            GameOfLife.Cell rowHeader = game.topleft;
+            while(x0 < 0 && rowHeader != null) {
+                rowHeader = rowHeader.e;
+                x0 += magnification;
+            }
+            while(y0 < 0 && rowHeader != null) {
+                rowHeader = rowHeader.s;
+                y0 += magnification;
+            }
+            GameOfLife.Cell current = rowHeader;
 
-        for(int delta_y = 0; rowHeader != null && y0 + delta_y < SIZE; delta_y += magnification) {
-            for(int delta_x = 0; current != null && x0 + delta_x < SIZE; delta_x += magnification) {
-                if(current.live) {
-                    drawPixel(x0 + delta_x, y0 + delta_y, magnification);
+            for(int delta_y = 0; rowHeader != null && y0 + delta_y < SIZE; delta_y += magnification) {
+                for(int delta_x = 0; current != null && x0 + delta_x < SIZE; delta_x += magnification) {
+                    if(current.live) {
+                        drawPixel(graphics, x0 + delta_x, y0 + delta_y, magnification);
+                    }
+                    current = current.e;
                 }
-                current = current.e;
+                rowHeader = rowHeader.s;
+                current = rowHeader;
             }
-            rowHeader = rowHeader.s;
-            current = rowHeader;
         }
     }
 
     @SuppressWarnings("unused")
-    private void drawPixel(int x, int y) {
-        drawPixel(x, y, 1);
+    private void drawPixel(Graphics graphics, int x, int y) {
+        drawPixel(graphics, x, y, 1);
     }
 
-    private void drawPixel(int x, int y, int m) {
-        g.fillRect(x, y, m, m);
+    private void drawPixel(Graphics graphics, int x, int y, int m) {
+        graphics.fillRect(x, y, m, m);
     }
 }
@@ -0,0 +1,273 @@
+package gameoflife;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * A record of the last few generations of a game of life, so that it can be
+ * rewound or two generations can be compared.
+ *
+ * Every generation is stored as the list of cells that flipped since the
+ * generation before it, with a full keyframe every so often. Edits to the
+ * grid are stored the same way, as the cells they flipped, on the generation
+ * they were made in. Generations are
+ * kept in a ring buffer, and the oldest ones are thrown away a keyframe at a
+ * time once the buffer uses more than its memory budget.
+ */
+public class History {
+
+    final int keyframeInterval;
+    final long budget;
+
+    private Frame[] ring = new Frame[64];
+    private int head = 0, size = 0;
+    private long bytes = 0;
+
+    /**
+     * One generation.
+     */
+    private static class Frame {
+        final int generation;
+        final int[] flips;                      // cells that flipped since the generation before, as (x, y) pairs
+        final int[] keyframe;                   // every live cell, as (x, y) pairs, or null
+        int[] edits;                            // cells flipped by edits made in this generation, or null
+        int editCount = 0;
+
+        Frame(int generation, int[] flips, int[] keyframe) {
+            this.generation = generation;
+            this.flips = flips;
+            this.keyframe = keyframe;
+        }
+
+        long bytes() {
+            return 48 + 4L * flips.length + (keyframe == null ? 0 : 16 + 4L * keyframe.length)
+                    + (edits == null ? 0 : 16 + 4L * edits.length);
+        }
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param keyframeInterval the number of generations between keyframes
+     * @param budget the approximate number of bytes the history may use
+     */
+    public History(int keyframeInterval, long budget) {
+        if(keyframeInterval < 1) {
+            throw new IllegalArgumentException("Keyframe interval must be greater than zero.");
+        }
+        this.keyframeInterval = keyframeInterval;
+        this.budget = budget;
+    }
+
+    private Frame get(int generation) {
+        return ring[(head + generation - getOldestGeneration()) % ring.length];
+    }
+
+    private void add(Frame frame) {
+        if(size == ring.length) {
+            Frame[] bigger = new Frame[2 * ring.length];
+            for(int i = 0; i < size; ++i) {
+                bigger[i] = ring[(head + i) % ring.length];
+            }
+            ring = bigger;
+            head = 0;
+        }
+        ring[(head + size++) % ring.length] = frame;
+        bytes += frame.bytes();
+
+        while(bytes > budget && evictOldest()) { }
+    }
+
+    /**
+     * Throws away the oldest keyframe and the generations that depend on it.
+     *
+     * @return true if anything was thrown away, false if only the newest keyframe is left
+     */
+    private boolean evictOldest() {
+        int next = 1;
+        while(next < size && ring[(head + next) % ring.length].keyframe == null) {
+            ++next;
+        }
+        if(next == size) {
+            return false;
+        }
+        for(int i = 0; i < next; ++i) {
+            bytes -= ring[head].bytes();
+            ring[head] = null;
+            head = (head + 1) % ring.length;
+            --size;
+        }
+        return true;
+    }
+
+    /**
+     * Throws away the whole history and starts it over from a keyframe.
+     *
+     * @param generation the generation
+     * @param liveCells every live cell in the generation, as (x, y) pairs
+     */
+    void restart(int generation, int[] liveCells) {
+        truncate(Integer.MIN_VALUE);
+        head = 0;
+        add(new Frame(generation, new int[0], liveCells));
+    }
+
+    /**
+     * Records the next generation.
+     *
+     * @param generation the generation, which must follow the newest recorded one
+     * @param flips the cells that flipped to get to this generation, as (x, y) pairs
+     * @param game the game of life, which is asked for a keyframe if one is due
+     */
+    void record(int generation, int[] flips, GameOfLife game) {
+        Frame newest = ring[(head + size - 1) % ring.length];
+        int sinceKeyframe = 0;
+        while(get(newest.generation - sinceKeyframe).keyframe == null) {
+            ++sinceKeyframe;
+        }
+        add(new Frame(generation, flips, sinceKeyframe + 1 >= keyframeInterval ? game.getLiveCells() : null));
+    }
+
+    /**
+     * Records an edit made to the grid. Any generations after the one the
+     * edit was made in are thrown away, since they no longer follow from it.
+     *
+     * @param generation the generation the edit was made in, which must be in the history
+     * @param flips the cells the edit flipped, as (x, y) pairs
+     * @param count the number of entries of flips to use
+     */
+    void recordEdit(int generation, int[] flips, int count) {
+        if(!contains(generation)) {
+            throw new IllegalArgumentException("Generation " + generation + " isn't in the history.");
+        }
+        if(count == 0) {
+            return;
+        }
+        truncate(generation);
+
+        Frame frame = get(generation);
+        bytes -= frame.bytes();
+        if(frame.edits == null) {
+            frame.edits = new int[Math.max(16, count)];
+        }
+        else if(frame.editCount + count > frame.edits.length) {
+            frame.edits = Arrays.copyOf(frame.edits, Math.max(frame.editCount + count, 2 * frame.edits.length));
+        }
+        System.arraycopy(flips, 0, frame.edits, frame.editCount, count);
+        frame.editCount += count;
+        bytes += frame.bytes();
+
+        while(bytes > budget && evictOldest()) { }
+    }
+
+    /**
+     * Throws away every generation after the given one.
+     *
+     * @param generation the last generation to keep
+     */
+    void truncate(int generation) {
+        while(size > 0 && getNewestGeneration() > generation) {
+            int tail = (head + size - 1) % ring.length;
+            bytes -= ring[tail].bytes();
+            ring[tail] = null;
+            --size;
+        }
+    }
+
+    public boolean contains(int generation) {
+        return size > 0 && generation >= getOldestGeneration() && generation <= getNewestGeneration();
+    }
+
+    public int getOldestGeneration() {
+        return ring[head].generation;
+    }
+
+    public int getNewestGeneration() {
+        return ring[(head + size - 1) % ring.length].generation;
+    }
+
+    /**
+     * Gets the approximate number of bytes the history is using.
+     *
+     * @return the number of bytes
+     */
+    public long getBytes() {
+        return bytes;
+    }
+
+    /**
+     * Rebuilds a recorded generation from the keyframe before it and the flips since.
+     *
+     * @param generation the generation
+     * @param x the x coordinate of grid[0][0]
+     * @param y the y coordinate of grid[0][0]
+     * @param w the width of the grid, which must cover every cell the history has seen
+     * @param h the height of the grid, which must cover every cell the history has seen
+     * @return the cells in the generation, indexed [row][column]
+     */
+    boolean[][] reconstruct(int generation, int x, int y, int w, int h) {
+        if(!contains(generation)) {
+            throw new IllegalArgumentException("Generation " + generation + " isn't in the history.");
+        }
+        int keyframe = generation;
+        while(get(keyframe).keyframe == null) {
+            --keyframe;
+        }
+
+        boolean[][] grid = new boolean[h][w];
+        Frame frame = get(keyframe);
+        for(int i = 0; i < frame.keyframe.length; i += 2) {
+            grid[frame.keyframe[i + 1] - y][frame.keyframe[i] - x] = true;
+        }
+        flip(grid, frame.edits, frame.editCount, x, y);
+        for(int gen = keyframe + 1; gen <= generation; ++gen) {
+            frame = get(gen);
+            flip(grid, frame.flips, frame.flips.length, x, y);
+            flip(grid, frame.edits, frame.editCount, x, y);
+        }
+        return grid;
+    }
+
+    private static void flip(boolean[][] grid, int[] cells, int count, int x, int y) {
+        for(int i = 0; i < count; i += 2) {
+            grid[cells[i + 1] - y][cells[i] - x] ^= true;
+        }
+    }
+
+    /**
+     * Finds the cells that differ between two recorded generations.
+     *
+     * @param from one generation
+     * @param to the other generation
+     * @return the cells that differ, as (x, y) pairs
+     */
+    public int[] diff(int from, int to) {
+        if(!contains(from) || !contains(to)) {
+            throw new IllegalArgumentException("Generations must be in the history.");
+        }
+        Set<Long> changed = new HashSet<Long>();
+        for(int gen = Math.min(from, to) + 1; gen <= Math.max(from, to); ++gen) {
+            Frame frame = get(gen);
+            flip(changed, frame.flips, frame.flips.length);
+            flip(changed, frame.edits, frame.editCount);
+        }
+
+        int[] cells = new int[2 * changed.size()];
+        int i = 0;
+        for(long cell : changed) {
+            cells[i++] = (int) (cell >> 32);
+            cells[i++] = (int) cell;
+        }
+        return cells;
+    }
+
+    private static void flip(Set<Long> changed, int[] flips, int count) {
+        for(int i = 0; i < count; i += 2) {
+            Long cell = ((long) flips[i] << 32) | (flips[i + 1] & 0xFFFFFFFFL);
+            if(!changed.remove(cell)) {
+                changed.add(cell);
+            }
+        }
+    }
+}
@@ -0,0 +1,327 @@
+package gameoflife;
+
+import java.util.Arrays;
+
+/**
+ * A bounded game of life grid packed 64 cells to a word, for when we need to
+ * run lots of small patterns quickly and don't need the linked cell grid.
+ *
+ * Bit i of word w in a row is the cell in column 64w + i. Everything outside
+ * the board is dead. The board keeps track of the rows and words that might
+ * hold live cells, and only those (plus a one-cell margin) are stepped.
+ */
+class PackedBoard {
+
+    final int words, width, height;
+    long[] cells, buffer;
+
+    final boolean[] born, survives;
+
+    // For each neighbor count k that can make a cell live: which bits k has, and whether
+    // k turns on dead cells and/or keeps live ones, each as all-ones or all-zeroes masks
+    private final long[] countBit0, countBit1, countBit2, countBit3, bornMask, survivesMask;
+
+    // Rows and words that may hold live cells in cells[] and buffer[]; empty when min > max
+    private int minRow, maxRow, minWord, maxWord;
+    private int bufferMinRow, bufferMaxRow, bufferMinWord, bufferMaxWord;
+
+    private int population = 0;
+    private boolean populationKnown = true;
+
+    /**
+     * Constructor.
+     *
+     * @param words the width of the board in 64-cell words
+     * @param height the height of the board
+     * @param born born[k] iff a dead cell with k live neighbors is born
+     * @param survives survives[k] iff a live cell with k live neighbors survives
+     */
+    PackedBoard(int words, int height, boolean[] born, boolean[] survives) {
+        if(born[0]) {
+            throw new IllegalArgumentException("B0 rules can't be run on a bounded board.");
+        }
+        this.words = words;
+        this.width = words * 64;
+        this.height = height;
+        this.cells = new long[words * height];
+        this.buffer = new long[words * height];
+        this.born = born;
+        this.survives = survives;
+
+        int active = 0;
+        for(int k = 0; k <= 8; ++k) {
+            if(born[k] || survives[k]) {
+                ++active;
+            }
+        }
+        countBit0 = new long[active];
+        countBit1 = new long[active];
+        countBit2 = new long[active];
+        countBit3 = new long[active];
+        bornMask = new long[active];
+        survivesMask = new long[active];
+        for(int k = 0, j = 0; k <= 8; ++k) {
+            if(born[k] || survives[k]) {
+                countBit0[j] = (k & 1) != 0 ? -1L : 0;
+                countBit1[j] = (k & 2) != 0 ? -1L : 0;
+                countBit2[j] = (k & 4) != 0 ? -1L : 0;
+                countBit3[j] = (k & 8) != 0 ? -1L : 0;
+                bornMask[j] = born[k] ? -1L : 0;
+                survivesMask[j] = survives[k] ? -1L : 0;
+                ++j;
+            }
+        }
+
+        setEmpty();
+        bufferMinRow = minRow;
+        bufferMaxRow = maxRow;
+        bufferMinWord = minWord;
+        bufferMaxWord = maxWord;
+    }
+
+    private void setEmpty() {
+        minRow = minWord = Integer.MAX_VALUE;
+        maxRow = maxWord = Integer.MIN_VALUE;
+    }
+
+    private void include(int row, int word) {
+        minRow = Math.min(minRow, row);
+        maxRow = Math.max(maxRow, row);
+        minWord = Math.min(minWord, word);
+        maxWord = Math.max(maxWord, word);
+    }
+
+    void set(int x, int y) {
+        cells[y * words + (x >>> 6)] |= 1L << x;
+        include(y, x >>> 6);
+        populationKnown = false;
+    }
+
+    void clear(int x, int y) {
+        cells[y * words + (x >>> 6)] &= ~(1L << x);     // the occupied range may now be too big, which is harmless
+        populationKnown = false;
+    }
+
+    /**
+     * Turns on a run of cells in one row, one word at a time.
+     *
+     * @param x the column of the first cell
+     * @param y the row
+     * @param bits the cells, first cell in the lowest bit
+     * @param count the number of cells in the run, at most 64
+     */
+    void setBits(int x, int y, long bits, int count) {
+        if(count < 64) {
+            bits &= (1L << count) - 1;
+        }
+        int w = y * words + (x >>> 6), shift = x & 63;
+        cells[w] |= bits << shift;
+        include(y, x >>> 6);
+        if(shift != 0 && shift + count > 64) {
+            cells[w + 1] |= bits >>> (64 - shift);
+            include(y, (x >>> 6) + 1);
+        }
+        populationKnown = false;
+    }
+
+    void clearAll() {
+        clearRange(cells, minRow, maxRow, minWord, maxWord);
+        setEmpty();
+        population = 0;
+        populationKnown = true;
+    }
+
+    private void clearRange(long[] board, int row0, int row1, int word0, int word1) {
+        for(int row = row0; row <= row1; ++row) {
+            Arrays.fill(board, row * words + word0, row * words + word1 + 1, 0);
+        }
+    }
+
+    /**
+     * Generates the next iteration.
+     */
+    void next() {
+        if(minRow > maxRow) {
+            return;
+        }
+        int row0 = Math.max(0, minRow - 1), row1 = Math.min(height - 1, maxRow + 1),
+            word0 = Math.max(0, minWord - 1), word1 = Math.min(words - 1, maxWord + 1);
+
+        // buffer[] still holds the generation before last; wipe whatever of it we won't overwrite
+        for(int row = bufferMinRow; row <= bufferMaxRow; ++row) {
+            for(int w = bufferMinWord; w <= bufferMaxWord; ++w) {
+                if(row < row0 || row > row1 || w < word0 || w > word1) {
+                    buffer[row * words + w] = 0;
+                }
+            }
+        }
+
+        int count = 0;
+        int newMinRow = Integer.MAX_VALUE, newMaxRow = Integer.MIN_VALUE,
+            newMinWord = Integer.MAX_VALUE, newMaxWord = Integer.MIN_VALUE;
+
+        for(int row = row0; row <= row1; ++row) {
+            for(int w = word0; w <= word1; ++w) {
+                int i = row * words + w;
+                long alive = cells[i];
+                boolean hasWest = w > 0, hasEast = w < words - 1;
+
+                long above = 0, aboveWest = 0, aboveEast = 0, below = 0, belowWest = 0, belowEast = 0,
+                     westWord = hasWest ? cells[i - 1] : 0, eastWord = hasEast ? cells[i + 1] : 0;
+                if(row > 0) {
+                    int j = i - words;
+                    above = cells[j];
+                    aboveWest = hasWest ? cells[j - 1] : 0;
+                    aboveEast = hasEast ? cells[j + 1] : 0;
+                }
+                if(row < height - 1) {
+                    int j = i + words;
+                    below = cells[j];
+                    belowWest = hasWest ? cells[j - 1] : 0;
+                    belowEast = hasEast ? cells[j + 1] : 0;
+                }
+
+                if((above | alive | below) == 0 && ((aboveWest | westWord | belowWest) >>> 63) == 0
+                        && ((aboveEast | eastWord | belowEast) & 1) == 0) {
+                    buffer[i] = 0;                      // nothing nearby, and B0 rules aren't allowed
+                    continue;
+                }
+
+                long s0 = 0, s1 = 0, s2 = 0, s3 = 0;   // neighbor count, one bit plane per binary digit
+                long[] neighbors = {
+                    (above << 1) | (aboveWest >>> 63), above, (above >>> 1) | (aboveEast << 63),
+                    (alive << 1) | (westWord >>> 63), (alive >>> 1) | (eastWord << 63),
+                    (below << 1) | (belowWest >>> 63), below, (below >>> 1) | (belowEast << 63)
+                };
+                for(long n : neighbors) {
+                    long carry = s0 & n;
+                    s0 ^= n;
+                    long c1 = s1 & carry;
+                    s1 ^= carry;
+                    s3 |= s2 & c1;
+                    s2 ^= c1;
+                }
+
+                long result = 0;
+                for(int k = 0; k < bornMask.length; ++k) {
+                    long matches = ~((s0 ^ countBit0[k]) | (s1 ^ countBit1[k]) | (s2 ^ countBit2[k]) | (s3 ^ countBit3[k]));
+                    result |= matches & ((bornMask[k] & ~alive) | (survivesMask[k] & alive));
+                }
+                buffer[i] = result;
+
+                if(result != 0) {
+                    count += Long.bitCount(result);
+                    newMinRow = Math.min(newMinRow, row);
+                    newMaxRow = row;
+                    newMinWord = Math.min(newMinWord, w);
+                    newMaxWord = Math.max(newMaxWord, w);
+                }
+            }
+        }
+
+        long[] t = cells;
+        cells = buffer;
+        buffer = t;
+
+        bufferMinRow = minRow;
+        bufferMaxRow = maxRow;
+        bufferMinWord = minWord;
+        bufferMaxWord = maxWord;
+        minRow = newMinRow;
+        maxRow = newMaxRow;
+        minWord = newMinWord;
+        maxWord = newMaxWord;
+
+        population = count;
+        populationKnown = true;
+    }
+
+    /**
+     * Copies the board into the middle of a board twice as wide and twice as tall.
+     * The copy is word-aligned, so it moves whole words rather than cells.
+     *
+     * @return the bigger board
+     */
+    PackedBoard grow() {
+        PackedBoard bigger = new PackedBoard(2 * words, 2 * height, born, survives);
+        int rowOffset = height / 2, wordOffset = words / 2;
+        if(minRow <= maxRow) {
+            for(int row = minRow; row <= maxRow; ++row) {
+                System.arraycopy(cells, row * words + minWord,
+                        bigger.cells, (row + rowOffset) * bigger.words + minWord + wordOffset, maxWord - minWord + 1);
+            }
+            bigger.include(minRow + rowOffset, minWord + wordOffset);
+            bigger.include(maxRow + rowOffset, maxWord + wordOffset);
+        }
+        bigger.population = population;
+        bigger.populationKnown = populationKnown;
+        return bigger;
+    }
+
+    int getPopulation() {
+        if(!populationKnown) {
+            population = 0;
+            for(int row = minRow; row <= maxRow; ++row) {
+                for(int w = minWord; w <= maxWord; ++w) {
+                    population += Long.bitCount(cells[row * words + w]);
+                }
+            }
+            populationKnown = true;
+        }
+        return population;
+    }
+
+    /**
+     * Checks whether any live cell is within the given distance of the edge of the board.
+     *
+     * @param margin the distance, at most 64
+     * @return true if a live cell is that close to the edge, otherwise false
+     */
+    boolean nearEdge(int margin) {
+        if(minRow > maxRow) {
+            return false;
+        }
+        if(minRow < margin || maxRow >= height - margin) {
+            for(int row = minRow; row <= maxRow; ++row) {
+                if(row < margin || row >= height - margin) {
+                    for(int w = minWord; w <= maxWord; ++w) {
+                        if(cells[row * words + w] != 0) {
+                            return true;
+                        }
+                    }
+                }
+            }
+        }
+
+        long left = margin == 64 ? -1L : (1L << margin) - 1,
+             right = margin == 64 ? -1L : ~(-1L >>> margin);
+        for(int row = minRow; row <= maxRow && (minWord == 0 || maxWord == words - 1); ++row) {
+            if((minWord == 0 && (cells[row * words] & left) != 0)
+                    || (maxWord == words - 1 && (cells[row * words + words - 1] & right) != 0)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Gets the coordinates of every live cell on the board, in row-major order.
+     *
+     * @return the live cells as consecutive (x, y) pairs
+     */
+    int[] getLiveCells() {
+        int[] live = new int[2 * getPopulation()];
+        int size = 0;
+        for(int row = minRow; row <= maxRow; ++row) {
+            for(int w = minWord; w <= maxWord; ++w) {
+                long word = cells[row * words + w];
+                while(word != 0) {
+                    live[size++] = w * 64 + Long.numberOfTrailingZeros(word);
+                    live[size++] = row;
+                    word &= word - 1;
+                }
+            }
+        }
+        return live;
+    }
+}
@@ -0,0 +1,211 @@
+package gameoflife;
+
+import java.io.*;
+import java.util.Arrays;
+import java.util.regex.Matcher;
+
+/**
+ * An index of where each row of a run-length encoded file starts, so that
+ * parts of a big pattern can be decoded without decoding all of it.
+ *
+ * The pattern's coordinates are the ones {@link gameoflife.GameOfLife} would
+ * give it if the whole pattern were loaded, i.e. centered on the origin.
+ */
+public class RLEIndex {
+
+    final static int BUFFER_SIZE = 1 << 16;
+
+    final File file;
+    final int width, height;
+    final String rule;
+
+    final long[] rowOffsets;                    // file offset of the first run in each row, or -1 if the row is empty
+
+    private RandomAccessFile raf;
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+    private long bufferStart = 0;
+    private int bufferLength = 0;
+
+    private RLEIndex(File file, int width, int height, String rule) {
+        this.file = file;
+        this.width = width;
+        this.height = height;
+        this.rule = rule;
+        this.rowOffsets = new long[height];
+        Arrays.fill(rowOffsets, -1);
+    }
+
+    /**
+     * Reads the header of an RLE file and makes one pass over the cell data
+     * to find where each row starts. No cells are decoded.
+     *
+     * @param file the RLE file
+     * @return the index
+     * @throws IOException if the file can't be read
+     * @throws IllegalArgumentException if the file isn't valid RLE
+     */
+    public static RLEIndex create(final File file) throws IOException, IllegalArgumentException {
+        InputStream in = new BufferedInputStream(new FileInputStream(file), BUFFER_SIZE);
+        try {
+            long offset = 0;
+            StringBuilder line = new StringBuilder();
+            String header = null;
+            int ch;
+
+            while(header == null) {
+                line.setLength(0);
+                while((ch = in.read()) != -1 && ch != '\n') {
+                    ++offset;
+                    if(ch != '\r') {
+                        line.append((char) ch);
+                    }
+                }
+                if(ch == -1 && line.length() == 0) {
+                    throw new IllegalArgumentException("No non-comment data in run-length enconding.");
+                }
+                if(ch != -1) {
+                    ++offset;
+                }
+                if(!line.toString().startsWith("#")) {
+                    header = line.toString();
+                }
+            }
+
+            Matcher headerMatcher = RLEReader.matchHeader(header);
+            RLEIndex index = new RLEIndex(file, Integer.parseInt(headerMatcher.group(1)),
+                    Integer.parseInt(headerMatcher.group(2)), RLEReader.getRule(headerMatcher));
+
+            int row = 0, runLength = 0;
+            boolean rowStarted = false, cellData = false;
+            for(; (ch = in.read()) != -1 && ch != '!'; ++offset) {
+                if(ch >= '0' && ch <= '9') {
+                    if(!rowStarted && row < index.height) {
+                        index.rowOffsets[row] = offset;
+                        rowStarted = true;
+                    }
+                    runLength = 10 * runLength + (ch - '0');
+                }
+                else if(ch == 'b' || ch == 'o') {
+                    if(!rowStarted && row < index.height) {
+                        index.rowOffsets[row] = offset;
+                        rowStarted = true;
+                    }
+                    runLength = 0;
+                    cellData = true;
+                }
+                else if(ch == '$') {
+                    row += runLength == 0 ? 1 : runLength;
+                    runLength = 0;
+                    rowStarted = false;
+                    cellData = true;
+                }
+            }
+
+            if(!cellData) {
+                throw new IllegalArgumentException("No cell data in run-length encoding.");
+            }
+            return index;
+        }
+        finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Decodes part of the pattern. Only the rows in the region are read, and
+     * each of those only as far as the right-hand edge of the region.
+     *
+     * @param x the x coordinate of the left edge of the region
+     * @param y the y coordinate of the top edge of the region
+     * @param w the width of the region
+     * @param h the height of the region
+     * @return the cells in the region, indexed [row][column]
+     * @throws IOException if the file can't be read
+     */
+    public synchronized boolean[][] decode(int x, int y, int w, int h) throws IOException {
+        boolean[][] grid = new boolean[h][w];
+        int colStart = x + width / 2, rowStart = y + height / 2;
+
+        if(raf == null) {
+            raf = new RandomAccessFile(file, "r");
+        }
+
+        for(int r = Math.max(0, -rowStart); r < h && rowStart + r < height; ++r) {
+            long offset = rowOffsets[rowStart + r];
+            if(offset < 0) {
+                continue;
+            }
+
+            int col = 0, runLength = 0, ch;
+            while(col < colStart + w && (ch = byteAt(offset++)) != -1 && ch != '$' && ch != '!') {
+                if(ch >= '0' && ch <= '9') {
+                    runLength = 10 * runLength + (ch - '0');
+                }
+                else if(ch == 'b' || ch == 'o') {
+                    int end = col + (runLength == 0 ? 1 : runLength);
+                    if(ch == 'o') {
+                        for(int c = Math.max(col, colStart); c < end && c < colStart + w; ++c) {
+                            grid[r][c - colStart] = true;
+                        }
+                    }
+                    col = end;
+                    runLength = 0;
+                }
+            }
+            if(col > width) {
+                throw new IllegalArgumentException("Too many cells in row.");
+            }
+        }
+        return grid;
+    }
+
+    private int byteAt(long offset) throws IOException {
+        if(offset < bufferStart || offset >= bufferStart + bufferLength) {
+            raf.seek(offset);
+            bufferStart = offset;
+            bufferLength = Math.max(0, raf.read(buffer));
+            if(bufferLength == 0) {
+                return -1;
+            }
+        }
+        return buffer[(int) (offset - bufferStart)];
+    }
+
+    /**
+     * Creates a game of life from part of the pattern. Cells keep the
+     * coordinates they'd have if the whole pattern were loaded.
+     *
+     * @param x the x coordinate of the left edge of the region
+     * @param y the y coordinate of the top edge of the region
+     * @param w the width of the region
+     * @param h the height of the region
+     * @return the game of life
+     * @throws IOException if the file can't be read
+     */
+    public GameOfLife load(int x, int y, int w, int h) throws IOException {
+        int left = Math.max(x, -(width / 2)), top = Math.max(y, -(height / 2)),
+            right = Math.min(x + w, width - width / 2), bottom = Math.min(y + h, height - height / 2);
+        if(right <= left || bottom <= top) {
+            left = top = 0;                     // the region misses the pattern, but a game of life needs at least one cell
+            right = bottom = 1;
+        }
+        return new GameOfLife(decode(left, top, right - left, bottom - top), rule, left, top);
+    }
+
+    /**
+     * Creates a game of life from the whole pattern.
+     *
+     * @return the game of life
+     * @throws IOException if the file can't be read
+     */
+    public GameOfLife load() throws IOException {
+        return load(-(width / 2), -(height / 2), width, height);
+    }
+
+    public synchronized void close() throws IOException {
+        if(raf != null) {
+            raf.close();
+            raf = null;
+        }
+    }
+}
@@ -40,24 +40,9 @@ public class RLEReader {
         try {
             String header = getHeaderLine();
 
-            Matcher headerMatcher = Pattern.compile(String.format("^%s, ?%s(, ?%s)?$",
-                    xPattern, yPattern, rulePattern), Pattern.CASE_INSENSITIVE).matcher(header);
-            if(!headerMatcher.matches()) {
-                throw new IllegalArgumentException("Invalid header line format.");
-            }
-
+            Matcher headerMatcher = matchHeader(header);
             int x = Integer.parseInt(headerMatcher.group(1)), y = Integer.parseInt(headerMatcher.group(2));
-            if(x < 1 || y < 1) {
-                throw new IllegalArgumentException("Grid height and width must be greater than zero.");
-            }
-
-            String rule;
-            if(headerMatcher.group(4) != null) {
-                rule = headerMatcher.group(4);
-            }
-            else {
-                rule = "B3/S23";
-            }
+            String rule = getRule(headerMatcher);
 
             boolean[][] grid = new boolean[y][x];
 
@@ -112,6 +97,42 @@ public class RLEReader {
         return null;
     }
 
+    /**
+     * Checks the RLE header line and matches it against the header format.
+     *
+     * @param header the header line
+     * @return a matcher whose groups 1 and 2 are the width and height of the pattern
+     * @throws IllegalArgumentException if the header line is malformed
+     */
+    static Matcher matchHeader(String header) throws IllegalArgumentException {
+        Matcher headerMatcher = Pattern.compile(String.format("^%s, ?%s(, ?%s)?$",
+                xPattern, yPattern, rulePattern), Pattern.CASE_INSENSITIVE).matcher(header);
+        if(!headerMatcher.matches()) {
+            throw new IllegalArgumentException("Invalid header line format.");
+        }
+
+        int x = Integer.parseInt(headerMatcher.group(1)), y = Integer.parseInt(headerMatcher.group(2));
+        if(x < 1 || y < 1) {
+            throw new IllegalArgumentException("Grid height and width must be greater than zero.");
+        }
+        return headerMatcher;
+    }
+
+    /**
+     * Gets the rule from a matched header line.
+     *
+     * @param headerMatcher the matcher returned by {@link gameoflife.RLEReader#matchHeader}
+     * @return the rule, or B3/S23 if the header doesn't have one
+     */
+    static String getRule(Matcher headerMatcher) {
+        if(headerMatcher.group(4) != null) {
+            return headerMatcher.group(4);
+        }
+        else {
+            return "B3/S23";
+        }
+    }
+
     /**
      * Advances the RLEReader to the first non-comment line and returns it.
      *
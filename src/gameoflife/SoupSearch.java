@@ -0,0 +1,631 @@
+package gameoflife;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+/**
+ * Generates random soups, runs each one until it settles down and takes a
+ * census of the objects that are left over.
+ *
+ * Every soup is seeded from the search seed and its own index, so a soup can be
+ * reproduced no matter which worker thread happened to run it.
+ */
+public class SoupSearch {
+
+    final static int MAX_POPULATION_PERIOD = 12,       // longest population cycle we wait for
+                     STABLE_WINDOW = 120,              // generations the cycle must hold before we stop
+                     MAX_OBJECT_PERIOD = 64,           // longest period we try when classifying an object
+                     INTERACTION_RANGE = 2,            // objects this close together might affect each other
+                     INTERACTION_GENERATIONS = 60,     // generations we watch two such objects for
+                     BOARD_WORDS = 4,                  // soups start on a board BOARD_WORDS * 64 cells square
+                     MAX_BOARD_WORDS = 32,             // and give up if it has to grow past this
+                     EDGE_MARGIN = 8,                  // objects this close to the edge have escaped
+                     DEFAULT_MAX_GENERATIONS = 40000;  // long-lived soups can take tens of thousands
+
+    final static String UNSTABILIZED = "PATHOLOGICAL",
+                        UNCLASSIFIED_PREFIX = "zz_";
+
+    final String rule;
+    final boolean[] born, survives;
+    final long seed;
+    final int soupSize, maxGenerations;
+
+    final ConcurrentMap<String, AtomicLong> census = new ConcurrentHashMap<String, AtomicLong>();
+    final AtomicInteger nextSoup = new AtomicInteger();
+    final AtomicLong soupsCompleted = new AtomicLong();
+
+    long elapsedNanos;
+
+    /**
+     * Constructor.
+     *
+     * @param rule the rule
+     * @param seed the search seed
+     * @param soupSize the width and height of each soup
+     * @param maxGenerations the number of generations after which a soup is given up on
+     */
+    public SoupSearch(String rule, long seed, int soupSize, int maxGenerations) {
+        if(soupSize < 1 || maxGenerations < 1) {
+            throw new IllegalArgumentException("Soup size and generation limit must be greater than zero.");
+        }
+        if(soupSize > BOARD_WORDS * 64 - 4 * EDGE_MARGIN) {
+            throw new IllegalArgumentException("Soup is too big for the board.");
+        }
+        this.rule = rule;
+        this.seed = seed;
+        this.soupSize = soupSize;
+        this.maxGenerations = maxGenerations;
+
+        GameOfLife.Rules rules = new GameOfLife.Rules(rule);
+        if(rules.born[0]) {
+            throw new IllegalArgumentException("B0 rules aren't supported.");
+        }
+        this.born = rules.born;
+        this.survives = rules.survives;
+    }
+
+    /**
+     * Constructor with Conway's original B3/S23 rule and 16x16 soups.
+     *
+     * @param seed the search seed
+     */
+    public SoupSearch(long seed) {
+        this("B3/S23", seed, 16, DEFAULT_MAX_GENERATIONS);
+    }
+
+    /**
+     * Fills a soup with random cells in the middle of an empty board. Each call
+     * to the generator supplies up to 64 cells of a row.
+     *
+     * @param index the soup index
+     * @param board the board
+     */
+    void createSoup(int index, PackedBoard board) {
+        Random random = new Random(seed + index * 0x9E3779B97F4A7C15L);
+        int x0 = (board.width - soupSize) / 2, y0 = (board.height - soupSize) / 2;
+
+        board.clearAll();
+        for(int row = 0; row < soupSize; ++row) {
+            for(int col = 0; col < soupSize; col += 64) {
+                board.setBits(x0 + col, y0 + row, random.nextLong(), Math.min(64, soupSize - col));
+            }
+        }
+    }
+
+    /**
+     * Runs a soup until its population settles into a short cycle. Spaceships
+     * that reach the edge of the board are taken off it and named on the way out;
+     * anything else that gets that far makes the board grow.
+     *
+     * @param board the soup
+     * @param escaped the names of the spaceships that were taken off the board
+     * @return the board the soup stabilized on, or null if it didn't stabilize
+     */
+    PackedBoard stabilize(PackedBoard board, List<String> escaped) {
+        int[] populations = new int[maxGenerations + 1];
+        populations[0] = board.getPopulation();
+
+        for(int gen = 1; gen <= maxGenerations; ++gen) {
+            board.next();
+            if(board.nearEdge(EDGE_MARGIN) && !removeEscapees(board, escaped)) {
+                if(board.words >= MAX_BOARD_WORDS) {
+                    return null;
+                }
+                board = board.grow();
+            }
+            populations[gen] = board.getPopulation();
+            if(populations[gen] == 0) {
+                return board;
+            }
+            if(gen % 10 == 0 && isPeriodic(populations, gen)) {
+                return board;
+            }
+        }
+        return null;
+    }
+
+    private boolean removeEscapees(PackedBoard board, List<String> escaped) {
+        boolean cleared = true;
+        for(int[] object : separate(board.getLiveCells())) {
+            int[] bounds = bounds(object);
+            if(bounds[0] >= EDGE_MARGIN && bounds[1] >= EDGE_MARGIN
+                    && bounds[2] < board.width - EDGE_MARGIN && bounds[3] < board.height - EDGE_MARGIN) {
+                continue;
+            }
+            String name = classify(object);
+            if(!name.startsWith("xq")) {
+                cleared = false;                        // something other than a spaceship is getting away
+                continue;
+            }
+            for(int i = 0; i < object.length; i += 2) {
+                board.clear(object[i], object[i + 1]);
+            }
+            escaped.add(name);
+        }
+        return cleared;
+    }
+
+    private static boolean isPeriodic(int[] populations, int gen) {
+        if(gen < STABLE_WINDOW + MAX_POPULATION_PERIOD) {
+            return false;
+        }
+        for(int p = 1; p <= MAX_POPULATION_PERIOD; ++p) {
+            int k = 0;
+            while(k < STABLE_WINDOW && populations[gen - k] == populations[gen - k - p]) {
+                ++k;
+            }
+            if(k == STABLE_WINDOW) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Splits a list of live cells into objects. Cells that touch, even at a
+     * corner, start out in the same object. Objects close enough to affect
+     * each other are merged only if running them together doesn't give the
+     * same cells as running them apart, so that things like a bi-block or a
+     * pair of blinkers are counted as their parts.
+     *
+     * @param cells the live cells as consecutive (x, y) pairs
+     * @return the objects, each one as consecutive (x, y) pairs
+     */
+    List<int[]> separate(int[] cells) {
+        Map<Long, Integer> index = new HashMap<Long, Integer>();
+        for(int i = 0; i < cells.length; i += 2) {
+            index.put(key(cells[i], cells[i + 1]), i);
+        }
+
+        // Cells that touch
+        List<int[]> components = new ArrayList<int[]>();
+        int[] component = new int[cells.length / 2];
+        Arrays.fill(component, -1);
+        int[] stack = new int[cells.length / 2];
+
+        for(int start = 0; start < cells.length; start += 2) {
+            if(component[start / 2] != -1) {
+                continue;
+            }
+            int[] object = new int[16];
+            int size = 0, top = 0;
+            stack[top++] = start;
+            component[start / 2] = components.size();
+
+            while(top > 0) {
+                int i = stack[--top];
+                if(size == object.length) {
+                    object = Arrays.copyOf(object, size * 2);
+                }
+                object[size++] = cells[i];
+                object[size++] = cells[i + 1];
+
+                for(int dy = -1; dy <= 1; ++dy) {
+                    for(int dx = -1; dx <= 1; ++dx) {
+                        Integer j = index.get(key(cells[i] + dx, cells[i + 1] + dy));
+                        if(j != null && component[j / 2] == -1) {
+                            component[j / 2] = components.size();
+                            stack[top++] = j;
+                        }
+                    }
+                }
+            }
+            components.add(Arrays.copyOf(object, size));
+        }
+
+        // Pairs of them close enough to interact
+        Set<Long> neighbors = new LinkedHashSet<Long>();
+        for(int i = 0; i < cells.length; i += 2) {
+            for(int dy = -INTERACTION_RANGE; dy <= INTERACTION_RANGE; ++dy) {
+                for(int dx = -INTERACTION_RANGE; dx <= INTERACTION_RANGE; ++dx) {
+                    Integer j = index.get(key(cells[i] + dx, cells[i + 1] + dy));
+                    if(j != null && component[i / 2] < component[j / 2]) {
+                        neighbors.add(key(component[i / 2], component[j / 2]));
+                    }
+                }
+            }
+        }
+
+        // Merge the groups that interact until no more do. A group can depend on
+        // several others at once, so a pair that didn't interact is tried again
+        // once either side has grown.
+        List<int[]> objects = new ArrayList<int[]>(components);
+        int[] group = new int[components.size()];
+        for(int c = 0; c < group.length; ++c) {
+            group[c] = c;
+        }
+        Map<Long, Long> tested = new HashMap<Long, Long>();     // pair of groups -> their sizes when tried
+        boolean merged = true;
+        while(merged) {
+            merged = false;
+            for(long pair : neighbors) {
+                int a = find(group, (int) (pair >> 32)), b = find(group, (int) pair);
+                if(a == b) {
+                    continue;
+                }
+                int first = Math.min(a, b), second = Math.max(a, b);
+                Long sizes = key(objects.get(first).length, objects.get(second).length);
+                if(sizes.equals(tested.put(key(first, second), sizes))
+                        || !interact(objects.get(first), objects.get(second))) {
+                    continue;
+                }
+                int[] both = Arrays.copyOf(objects.get(first), objects.get(first).length + objects.get(second).length);
+                System.arraycopy(objects.get(second), 0, both, objects.get(first).length, objects.get(second).length);
+                objects.set(first, both);
+                objects.set(second, null);
+                group[second] = first;
+                merged = true;
+            }
+        }
+
+        objects.removeAll(Collections.singleton((int[]) null));
+        return objects;
+    }
+
+    private static int find(int[] group, int c) {
+        while(group[c] != c) {
+            c = group[c] = group[group[c]];
+        }
+        return c;
+    }
+
+    /**
+     * Checks whether two objects affect each other, by running them together
+     * and apart side by side for INTERACTION_GENERATIONS.
+     *
+     * @param a one object as consecutive (x, y) pairs
+     * @param b the other object as consecutive (x, y) pairs
+     * @return true if running them together differs from running them apart
+     */
+    private boolean interact(int[] a, int[] b) {
+        int[] both = Arrays.copyOf(a, a.length + b.length);
+        System.arraycopy(b, 0, both, a.length, b.length);
+        int[] bounds = bounds(both);
+        int margin = INTERACTION_GENERATIONS / 2,           // as far as a c/2 ship gets
+            words = (bounds[2] - bounds[0] + 2 * margin + 64) / 64, height = bounds[3] - bounds[1] + 1 + 2 * margin,
+            x0 = bounds[0] - margin, y0 = bounds[1] - margin;
+
+        PackedBoard together = place(both, x0, y0, words, height),
+                    apart = place(a, x0, y0, words, height), other = place(b, x0, y0, words, height);
+        for(int gen = 0; gen < INTERACTION_GENERATIONS; ++gen) {
+            together.next();
+            apart.next();
+            other.next();
+            for(int i = 0; i < together.cells.length; ++i) {
+                if((apart.cells[i] & other.cells[i]) != 0 || (apart.cells[i] | other.cells[i]) != together.cells[i]) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private PackedBoard place(int[] cells, int x0, int y0, int words, int height) {
+        PackedBoard board = new PackedBoard(words, height, born, survives);
+        for(int i = 0; i < cells.length; i += 2) {
+            board.set(cells[i] - x0, cells[i + 1] - y0);
+        }
+        return board;
+    }
+
+    private static long key(int x, int y) {
+        return ((long) x << 32) | (y & 0xFFFFFFFFL);
+    }
+
+    /**
+     * Runs an object on its own to find its period and displacement, then
+     * names it by its canonical form.
+     *
+     * @param object the object as consecutive (x, y) pairs
+     * @return the census name of the object
+     */
+    String classify(int[] object) {
+        int[] bounds = bounds(object);
+        int pad = 2;                                    // small grids are too narrow to grow on their own
+        boolean[][] seed = new boolean[bounds[3] - bounds[1] + 1 + 2 * pad][bounds[2] - bounds[0] + 1 + 2 * pad];
+        for(int i = 0; i < object.length; i += 2) {
+            seed[object[i + 1] - bounds[1] + pad][object[i] - bounds[0] + pad] = true;
+        }
+
+        GameOfLife gameOfLife = new GameOfLife(seed, rule);
+        int[] initial = gameOfLife.getLiveCells(), initialBounds = bounds(initial);
+        String initialShape = Arrays.toString(normalize(initial));
+        List<int[]> phases = new ArrayList<int[]>();
+        phases.add(initial);
+
+        for(int period = 1; period <= MAX_OBJECT_PERIOD; ++period) {
+            gameOfLife.next();
+            int[] current = gameOfLife.getLiveCells();
+            if(current.length == 0) {
+                break;
+            }
+            if(current.length == initial.length && Arrays.toString(normalize(current)).equals(initialShape)) {
+                int[] currentBounds = bounds(current);
+                boolean moved = currentBounds[0] != initialBounds[0] || currentBounds[1] != initialBounds[1];
+                String prefix;
+                if(moved) {
+                    prefix = "xq" + period;
+                }
+                else if(period == 1) {
+                    prefix = "xs" + initial.length / 2;
+                }
+                else {
+                    prefix = "xp" + period;
+                }
+                return prefix + "_" + canonicalCode(phases);
+            }
+            phases.add(current);
+        }
+        return UNCLASSIFIED_PREFIX + canonicalCode(Collections.singletonList(initial));
+    }
+
+    /**
+     * Encodes each phase of an object in each of its eight orientations and
+     * picks the smallest code, so every copy of an object gets the same name.
+     *
+     * The code is the object's apgcode body in extended Wechsler format, as
+     * used by Catagolue: the object is cut into strips five rows tall, each
+     * column of a strip is one base-32 digit with the top cell in the lowest
+     * bit, runs of empty columns are shortened to w, x or y, and strips are
+     * separated by 'z'.
+     *
+     * @param phases the phases of the object
+     * @return the canonical code
+     */
+    static String canonicalCode(List<int[]> phases) {
+        String best = null;
+        for(int[] phase : phases) {
+            for(int orientation = 0; orientation < 8; ++orientation) {
+                int[] transformed = new int[phase.length];
+                for(int i = 0; i < phase.length; i += 2) {
+                    int x = phase[i], y = phase[i + 1];
+                    if((orientation & 4) != 0) {
+                        int t = x;
+                        x = y;
+                        y = t;
+                    }
+                    transformed[i] = (orientation & 1) != 0 ? -x : x;
+                    transformed[i + 1] = (orientation & 2) != 0 ? -y : y;
+                }
+                String code = encode(transformed);
+                if(best == null || code.length() < best.length()
+                        || (code.length() == best.length() && code.compareTo(best) < 0)) {
+                    best = code;
+                }
+            }
+        }
+        return best;
+    }
+
+    private static String encode(int[] cells) {
+        int[] bounds = bounds(cells);
+        int width = bounds[2] - bounds[0] + 1, height = bounds[3] - bounds[1] + 1;
+        int strips = (height + 4) / 5;
+        int[][] columns = new int[strips][width];
+        for(int i = 0; i < cells.length; i += 2) {
+            int row = cells[i + 1] - bounds[1];
+            columns[row / 5][cells[i] - bounds[0]] |= 1 << (row % 5);
+        }
+
+        StringBuilder sb = new StringBuilder();
+        for(int strip = 0; strip < strips; ++strip) {
+            if(strip > 0) {
+                sb.append('z');
+            }
+            int zeroes = 0;
+            for(int col = 0; col < width; ++col) {
+                if(columns[strip][col] == 0) {
+                    ++zeroes;                           // trailing empty columns are left out altogether
+                    continue;
+                }
+                appendZeroes(sb, zeroes);
+                zeroes = 0;
+                sb.append(Character.forDigit(columns[strip][col], 32));
+            }
+        }
+        return sb.toString();
+    }
+
+    private static void appendZeroes(StringBuilder sb, int zeroes) {
+        while(zeroes >= 4) {
+            int run = Math.min(zeroes, 39);
+            sb.append('y').append(Character.forDigit(run - 4, 36));
+            zeroes -= run;
+        }
+        if(zeroes == 3) {
+            sb.append('x');
+        }
+        else if(zeroes == 2) {
+            sb.append('w');
+        }
+        else if(zeroes == 1) {
+            sb.append('0');
+        }
+    }
+
+    /**
+     * Gets the bounding box of a list of cells.
+     *
+     * @param cells the cells as consecutive (x, y) pairs
+     * @return {minX, minY, maxX, maxY}
+     */
+    static int[] bounds(int[] cells) {
+        int[] bounds = {Integer.MAX_VALUE, Integer.MAX_VALUE, Integer.MIN_VALUE, Integer.MIN_VALUE};
+        for(int i = 0; i < cells.length; i += 2) {
+            bounds[0] = Math.min(bounds[0], cells[i]);
+            bounds[1] = Math.min(bounds[1], cells[i + 1]);
+            bounds[2] = Math.max(bounds[2], cells[i]);
+            bounds[3] = Math.max(bounds[3], cells[i + 1]);
+        }
+        return bounds;
+    }
+
+    private static int[] normalize(int[] cells) {
+        int[] bounds = bounds(cells);
+        long[] keys = new long[cells.length / 2];
+        for(int i = 0; i < cells.length; i += 2) {
+            keys[i / 2] = key(cells[i + 1] - bounds[1], cells[i] - bounds[0]);
+        }
+        Arrays.sort(keys);
+
+        int[] normalized = new int[cells.length];
+        for(int i = 0; i < keys.length; ++i) {
+            normalized[2 * i] = (int) keys[i];
+            normalized[2 * i + 1] = (int) (keys[i] >> 32);
+        }
+        return normalized;
+    }
+
+    private void tally(String name) {
+        AtomicLong count = census.get(name);
+        if(count == null) {
+            AtomicLong created = new AtomicLong();
+            count = census.putIfAbsent(name, created);
+            if(count == null) {
+                count = created;
+            }
+        }
+        count.incrementAndGet();
+    }
+
+    /**
+     * Runs a single soup and adds its objects to the census.
+     *
+     * @param index the soup index
+     * @param board the board to run it on
+     */
+    void runSoup(int index, PackedBoard board) {
+        List<String> escaped = new ArrayList<String>();
+        createSoup(index, board);
+        board = stabilize(board, escaped);
+        for(String name : escaped) {
+            tally(name);                                // these got away whether or not the rest settled down
+        }
+        if(board == null) {
+            tally(UNSTABILIZED);
+            return;
+        }
+        for(int[] object : separate(board.getLiveCells())) {
+            tally(classify(object));
+        }
+    }
+
+    /**
+     * Runs a batch of soups across a pool of worker threads.
+     *
+     * @param soups the number of soups
+     * @param threads the number of worker threads
+     * @throws InterruptedException if interrupted while waiting for the workers
+     */
+    public void run(final int soups, int threads) throws InterruptedException {
+        ExecutorService workers = Executors.newFixedThreadPool(threads);
+        long start = System.nanoTime();
+
+        for(int t = 0; t < threads; ++t) {
+            workers.execute(new Runnable() {
+                @Override public void run() {
+                    PackedBoard board = new PackedBoard(BOARD_WORDS, BOARD_WORDS * 64, born, survives);
+                    int index;
+                    while((index = nextSoup.getAndIncrement()) < soups) {
+                        runSoup(index, board);
+                        soupsCompleted.incrementAndGet();
+                    }
+                }
+            });
+        }
+        workers.shutdown();
+        workers.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+
+        elapsedNanos += System.nanoTime() - start;
+    }
+
+    /**
+     * Gets the search throughput.
+     *
+     * @return the number of soups completed per second
+     */
+    public double getSoupsPerSecond() {
+        return elapsedNanos == 0 ? 0 : soupsCompleted.get() * 1e9 / elapsedNanos;
+    }
+
+    /**
+     * Gets the census, most common objects first.
+     *
+     * @return the census
+     */
+    public List<Map.Entry<String, Long>> getCensus() {
+        List<Map.Entry<String, Long>> entries = new ArrayList<Map.Entry<String, Long>>();
+        for(Map.Entry<String, AtomicLong> entry : census.entrySet()) {
+            entries.add(new AbstractMap.SimpleImmutableEntry<String, Long>(entry.getKey(), entry.getValue().get()));
+        }
+        Collections.sort(entries, new Comparator<Map.Entry<String, Long>>() {
+            @Override public int compare(Map.Entry<String, Long> a, Map.Entry<String, Long> b) {
+                int c = b.getValue().compareTo(a.getValue());
+                return c != 0 ? c : a.getKey().compareTo(b.getKey());
+            }
+        });
+        return entries;
+    }
+
+    /**
+     * Writes the census as one "name count" line per object.
+     *
+     * @param file the census file
+     * @throws IOException if the file can't be written
+     */
+    public void writeCensus(File file) throws IOException {
+        PrintWriter out = new PrintWriter(new BufferedWriter(new FileWriter(file)));
+        try {
+            out.printf("#rule=%s seed=%d soup=%dx%d soups=%d%n", rule, seed, soupSize, soupSize, soupsCompleted.get());
+            for(Map.Entry<String, Long> entry : getCensus()) {
+                out.println(entry.getKey() + " " + entry.getValue());
+            }
+        }
+        finally {
+            out.close();
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        String rule = "B3/S23";
+        long seed = System.currentTimeMillis();
+        int soups = 1000, threads = Runtime.getRuntime().availableProcessors(), size = 16, generations = DEFAULT_MAX_GENERATIONS;
+        File output = new File("census.txt");
+
+        for(int i = 0; i + 1 < args.length; i += 2) {
+            if(args[i].equals("-rule")) {
+                rule = args[i + 1];
+            }
+            else if(args[i].equals("-seed")) {
+                seed = Long.parseLong(args[i + 1]);
+            }
+            else if(args[i].equals("-soups")) {
+                soups = Integer.parseInt(args[i + 1]);
+            }
+            else if(args[i].equals("-threads")) {
+                threads = Integer.parseInt(args[i + 1]);
+            }
+            else if(args[i].equals("-size")) {
+                size = Integer.parseInt(args[i + 1]);
+            }
+            else if(args[i].equals("-generations")) {
+                generations = Integer.parseInt(args[i + 1]);
+            }
+            else if(args[i].equals("-out")) {
+                output = new File(args[i + 1]);
+            }
+            else {
+                throw new IllegalArgumentException("Unknown option " + args[i]);
+            }
+        }
+
+        SoupSearch search = new SoupSearch(rule, seed, size, generations);
+        search.run(soups, threads);
+        search.writeCensus(output);
+
+        System.out.printf("%d soups in %.1f s (%.1f soups/sec), seed %d, census written to %s%n",
+                search.soupsCompleted.get(), search.elapsedNanos / 1e9, search.getSoupsPerSecond(), seed, output);
+    }
+}